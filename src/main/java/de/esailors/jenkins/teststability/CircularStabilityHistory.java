@@ -33,6 +33,11 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
 import de.esailors.jenkins.teststability.StabilityTestData.Result;
 
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 /**
@@ -214,6 +219,41 @@ public class CircularStabilityHistory {
 		add(new Result(buildNumber, passed));
 	}
 
+	/**
+	 * Aggregates several histories into a single one, e.g. to derive the
+	 * stability of a test class from the histories of its test cases.
+	 * <p>
+	 * The histories are aligned by build number and their failures are OR-ed:
+	 * a build counts as failed if it failed in any of the histories and as
+	 * passed otherwise. Only the newest builds which fit into the largest of
+	 * the given histories are kept.
+	 * 
+	 * @return the aggregated history or <code>null</code> if there was nothing to aggregate
+	 */
+	@CheckForNull
+	public static CircularStabilityHistory aggregate(Iterable<CircularStabilityHistory> histories) {
+		SortedMap<Integer, Boolean> failedPerBuild = new TreeMap<Integer, Boolean>();
+		int maxSize = 0;
+		
+		for (CircularStabilityHistory history : histories) {
+			maxSize = Math.max(maxSize, history.getMaxSize());
+			for (Result r : history.getData()) {
+				Boolean failed = failedPerBuild.get(r.buildNumber);
+				failedPerBuild.put(r.buildNumber, (failed != null && failed) | !r.passed);
+			}
+		}
+		
+		if (failedPerBuild.isEmpty()) {
+			return null;
+		}
+		
+		CircularStabilityHistory aggregated = new CircularStabilityHistory(maxSize);
+		for (Map.Entry<Integer, Boolean> entry : failedPerBuild.entrySet()) {
+			aggregated.add(entry.getKey(), !entry.getValue());
+		}
+		return aggregated;
+	}
+
 	public boolean isAllPassed() {
 		
 		if (size == 0) {
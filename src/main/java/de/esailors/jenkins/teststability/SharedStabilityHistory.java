@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013, eSailors IT Solutions GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.esailors.jenkins.teststability;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Stability history shared by all jobs of a parent item, e.g. the branches of a
+ * multibranch project.
+ * <p>
+ * Each job only writes its own results into the shared history. A job can use a
+ * shared history as the base of a test which is new to it.
+ * The stored histories are never modified in place, but replaced on update, so
+ * readers don't need to copy them unless they want to change them.
+ * <p>
+ * Changes are not saved by the publishers, but periodically and on shutdown.
+ */
+class SharedStabilityHistory {
+	
+	private static final Logger LOGGER = Logger.getLogger(SharedStabilityHistory.class.getName());
+	
+	private static final String FILE_NAME = "test-stability-shared.xml";
+	
+	static {
+		// the alias and the converter of the stored histories are registered by these
+		initialize(StabilityTestData.class);
+		initialize(CircularStabilityHistory.class);
+	}
+	
+	/**
+	 * Shared histories by their parent item. Entries go away together with the
+	 * item, e.g. when it is deleted or Jenkins is reloaded.
+	 */
+	private static final Map<Item, Holder> HISTORIES = new WeakHashMap<Item, Holder>();
+	
+	private final Map<String, CircularStabilityHistory> stability;
+	
+	// the item must not be strongly referenced from the value of its HISTORIES entry
+	private transient WeakReference<Item> parent;
+	private transient boolean dirty;
+	
+	private SharedStabilityHistory(Map<String, CircularStabilityHistory> stability) {
+		this.stability = stability;
+	}
+	
+	private static void initialize(Class<?> type) {
+		try {
+			Class.forName(type.getName(), true, type.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * Returns the shared history for the parent of the given job.
+	 * 
+	 * @return the shared history or <code>null</code> if the job is a top-level item
+	 */
+	@CheckForNull
+	static SharedStabilityHistory forJob(Job<?, ?> job) throws IOException {
+		ItemGroup<?> group = job.getParent();
+		if (!(group instanceof Item)) {
+			return null;
+		}
+		
+		Item item = (Item) group;
+		Holder holder;
+		synchronized (HISTORIES) {
+			holder = HISTORIES.get(item);
+			if (holder == null) {
+				holder = new Holder();
+				HISTORIES.put(item, holder);
+			}
+		}
+		return holder.get(item);
+	}
+	
+	/**
+	 * Saves all changed shared histories.
+	 */
+	static void saveAll() {
+		List<SharedStabilityHistory> histories = new ArrayList<SharedStabilityHistory>();
+		synchronized (HISTORIES) {
+			for (Holder holder : HISTORIES.values()) {
+				SharedStabilityHistory history = holder.getIfLoaded();
+				if (history != null) {
+					histories.add(history);
+				}
+			}
+		}
+		
+		for (SharedStabilityHistory history : histories) {
+			try {
+				history.save();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to save shared test stability history", e);
+			}
+		}
+	}
+	
+	/**
+	 * Forgets all loaded shared histories, without saving them. For tests only.
+	 */
+	static void forgetAll() {
+		synchronized (HISTORIES) {
+			HISTORIES.clear();
+		}
+	}
+	
+	/**
+	 * The file is resolved on each access, as the item may have been renamed.
+	 */
+	private static XmlFile getFile(Item item) {
+		return new XmlFile(Jenkins.XSTREAM2, new File(item.getRootDir(), FILE_NAME));
+	}
+	
+	/**
+	 * Returns the shared history of the given test. It must not be modified.
+	 * 
+	 * @return the history or <code>null</code> if there is no shared history for the test
+	 */
+	@CheckForNull
+	synchronized CircularStabilityHistory get(String testId) {
+		return stability.get(testId);
+	}
+	
+	/**
+	 * Adds a result of the given test. Results of tests which never failed are
+	 * not recorded, just like in the history of a single job.
+	 */
+	synchronized void add(String testId, int buildNumber, boolean passed, int maxHistoryLength) {
+		CircularStabilityHistory history = stability.get(testId);
+		if (history == null && passed) {
+			return;
+		}
+		
+		CircularStabilityHistory newHistory = new CircularStabilityHistory(maxHistoryLength);
+		if (history != null) {
+			newHistory.addAll(history.getData());
+		}
+		newHistory.add(buildNumber, passed);
+		
+		if (newHistory.isAllPassed()) {
+			stability.remove(testId);
+		} else {
+			stability.put(testId, newHistory);
+		}
+		dirty = true;
+	}
+	
+	/**
+	 * Writes a snapshot of the histories, so that publishers aren't blocked
+	 * while writing.
+	 */
+	void save() throws IOException {
+		Item item = parent.get();
+		SharedStabilityHistory snapshot;
+		synchronized (this) {
+			if (!dirty || item == null) {
+				return;
+			}
+			snapshot = new SharedStabilityHistory(new HashMap<String, CircularStabilityHistory>(stability));
+			dirty = false;
+		}
+		
+		try {
+			getFile(item).write(snapshot);
+		} catch (IOException e) {
+			synchronized (this) {
+				dirty = true;
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Loads the shared history of an item on first access, without blocking the
+	 * other items.
+	 */
+	private static class Holder {
+		private volatile SharedStabilityHistory history;
+		
+		synchronized SharedStabilityHistory get(Item item) throws IOException {
+			if (history == null) {
+				XmlFile xmlFile = getFile(item);
+				SharedStabilityHistory loaded = xmlFile.exists()
+						? (SharedStabilityHistory) xmlFile.read()
+						: new SharedStabilityHistory(new HashMap<String, CircularStabilityHistory>());
+				loaded.parent = new WeakReference<Item>(item);
+				history = loaded;
+			}
+			return history;
+		}
+		
+		@CheckForNull
+		SharedStabilityHistory getIfLoaded() {
+			return history;
+		}
+	}
+	
+	@Extension
+	public static class Saver extends AsyncPeriodicWork {
+		
+		public Saver() {
+			super("Test stability shared history saver");
+		}
+
+		@Override
+		public long getRecurrencePeriod() {
+			return TimeUnit.MINUTES.toMillis(1);
+		}
+
+		@Override
+		protected void execute(TaskListener listener) {
+			saveAll();
+		}
+	}
+	
+	@Extension
+	public static class ShutdownSaver extends ItemListener {
+		
+		@Override
+		public void onBeforeShutdown() {
+			saveAll();
+		}
+	}
+}
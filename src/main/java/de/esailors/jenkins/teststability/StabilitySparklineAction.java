@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013, eSailors IT Solutions GmbH
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.esailors.jenkins.teststability;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.RootAction;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import de.esailors.jenkins.teststability.StabilityTestData.Result;
+
+/**
+ * Serves pass/fail sparklines of test stability histories as SVG.
+ * <p>
+ * The history is encoded in the URL (see {@link #getHistoryKey(Result[])}), so
+ * the rendered images are cached by their content and can be revalidated by
+ * the browser via ETag/Last-Modified.
+ */
+@Extension
+public class StabilitySparklineAction implements RootAction {
+	
+	static final String URL_NAME = "test-stability";
+	
+	private static final int MAX_HISTORY_KEY_LENGTH = 1000;
+	private static final int MAX_CACHED_BYTES = 1024 * 1024;
+	
+	private static final int BAR_WIDTH = 2;
+	private static final int BAR_GAP = 1;
+	private static final int HEIGHT = 12;
+	
+	/**
+	 * Sparklines only depend on their history and the rendering. Change this
+	 * whenever the rendering changes, as it is also part of the ETag.
+	 */
+	private static final long LAST_MODIFIED = 1792281600000L; // 2026-10-18
+	
+	/**
+	 * Rendered sparklines in LRU order, bounded by their total size.
+	 */
+	private static final LinkedHashMap<String, Sparkline> CACHE = new LinkedHashMap<String, Sparkline>(16, 0.75f, true);
+	private static int cachedBytes;
+	
+	/**
+	 * Encodes the given results as a string of '1' (passed) and '0' (failed),
+	 * oldest first. Only the newest {@value #MAX_HISTORY_KEY_LENGTH} results are encoded.
+	 */
+	static String getHistoryKey(Result[] data) {
+		int start = Math.max(0, data.length - MAX_HISTORY_KEY_LENGTH);
+		StringBuilder buf = new StringBuilder(data.length - start);
+		for (int i = start; i < data.length; i++) {
+			buf.append(data[i].passed ? '1' : '0');
+		}
+		return buf.toString();
+	}
+	
+	/**
+	 * URL of the sparkline for the given history, relative to the root URL.
+	 */
+	static String getSparklineUrl(String historyKey) {
+		return URL_NAME + "/sparkline?history=" + historyKey;
+	}
+	
+	public void doSparkline(StaplerRequest req, StaplerResponse rsp, @QueryParameter String history) throws IOException {
+		if (!isValidHistoryKey(history)) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		
+		Sparkline sparkline = getSparkline(history);
+		
+		rsp.setHeader("ETag", sparkline.etag);
+		rsp.setDateHeader("Last-Modified", LAST_MODIFIED);
+		rsp.setHeader("Cache-Control", "max-age=86400");
+		
+		if (isNotModified(req, sparkline)) {
+			rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		rsp.setContentType("image/svg+xml;charset=UTF-8");
+		rsp.setContentLength(sparkline.svg.length);
+		rsp.getOutputStream().write(sparkline.svg);
+	}
+	
+	private static boolean isValidHistoryKey(String history) {
+		if (history == null || history.isEmpty() || history.length() > MAX_HISTORY_KEY_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < history.length(); i++) {
+			char c = history.charAt(i);
+			if (c != '0' && c != '1') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isNotModified(StaplerRequest req, Sparkline sparkline) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			// may be a list of (possibly weak) ETags or '*'
+			for (String etag : ifNoneMatch.split(",")) {
+				etag = etag.trim();
+				if (etag.startsWith("W/")) {
+					etag = etag.substring(2);
+				}
+				if (etag.equals("*") || etag.equals(sparkline.etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = req.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			// malformed date, same as none
+			return false;
+		}
+		// HTTP dates have a resolution of seconds
+		return ifModifiedSince != -1 && LAST_MODIFIED / 1000 <= ifModifiedSince / 1000;
+	}
+	
+	static Sparkline getSparkline(String history) {
+		synchronized (CACHE) {
+			Sparkline sparkline = CACHE.get(history);
+			if (sparkline == null) {
+				sparkline = new Sparkline(history);
+				CACHE.put(history, sparkline);
+				cachedBytes += sparkline.svg.length;
+				
+				Iterator<Sparkline> eldest = CACHE.values().iterator();
+				while (cachedBytes > MAX_CACHED_BYTES && CACHE.size() > 1) {
+					cachedBytes -= eldest.next().svg.length;
+					eldest.remove();
+				}
+			}
+			return sparkline;
+		}
+	}
+	
+	/**
+	 * Renders failures as full height red bars and passes as short green ones,
+	 * each color as a single path.
+	 */
+	static String renderSvg(String history) {
+		int width = history.length() * (BAR_WIDTH + BAR_GAP) - BAR_GAP;
+		
+		StringBuilder passed = new StringBuilder(history.length() * 12);
+		StringBuilder failed = new StringBuilder(history.length() * 12);
+		for (int i = 0; i < history.length(); i++) {
+			boolean p = history.charAt(i) == '1';
+			int barHeight = p ? HEIGHT / 2 : HEIGHT;
+			(p ? passed : failed).append('M').append(i * (BAR_WIDTH + BAR_GAP)).append(' ').append(HEIGHT - barHeight)
+				.append('h').append(BAR_WIDTH).append('v').append(barHeight).append('h').append(-BAR_WIDTH).append('z');
+		}
+		
+		StringBuilder svg = new StringBuilder(128 + passed.length() + failed.length());
+		svg.append("<svg xmlns='http://www.w3.org/2000/svg' width='").append(width)
+			.append("' height='").append(HEIGHT).append("'>");
+		if (passed.length() > 0) {
+			svg.append("<path fill='#4c9a2a' d='").append(passed).append("'/>");
+		}
+		if (failed.length() > 0) {
+			svg.append("<path fill='#d24939' d='").append(failed).append("'/>");
+		}
+		svg.append("</svg>");
+		return svg.toString();
+	}
+	
+	static class Sparkline {
+		final byte[] svg;
+		final String etag;
+		
+		Sparkline(String history) {
+			try {
+				this.svg = renderSvg(history).getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new AssertionError(e);
+			}
+			this.etag = "\"" + Util.getDigestOf(LAST_MODIFIED + ":" + history) + "\"";
+		}
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return null;
+	}
+
+	public String getUrlName() {
+		return URL_NAME;
+	}
+}
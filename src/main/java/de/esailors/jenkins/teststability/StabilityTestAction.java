@@ -39,6 +39,7 @@ import de.esailors.jenkins.teststability.StabilityTestData.Result;
 class StabilityTestAction extends TestAction {
 
 	private CircularStabilityHistory ringBuffer;
+	private CircularStabilityHistory sharedBase;
 	private String description;
 	
 	private int total;
@@ -46,16 +47,32 @@ class StabilityTestAction extends TestAction {
 	private int testStatusChanges;
 	private int stability = 100;
 	private int flakiness;
+	
+	private String sparklineUrl;
+	private String bigImagePath;
+	private String smallImagePath;
 
 	public StabilityTestAction(@CheckForNull CircularStabilityHistory ringBuffer) {
+		this(ringBuffer, null);
+	}
+	
+	/**
+	 * @param ringBuffer the history of this job
+	 * @param sharedBase the history shared by other jobs which precedes the one of this job
+	 */
+	public StabilityTestAction(@CheckForNull CircularStabilityHistory ringBuffer,
+			@CheckForNull CircularStabilityHistory sharedBase) {
 		this.ringBuffer = ringBuffer;
+		this.sharedBase = sharedBase;
 
-		if (ringBuffer != null) {
-			Result[] data = ringBuffer.getData();
+		Result[] data = getData();
+		if (data.length > 0) {
 			this.total = data.length;
 		
 			computeStability(data);
 			computeFlakiness(data);
+			
+			this.sparklineUrl = StabilitySparklineAction.getSparklineUrl(StabilitySparklineAction.getHistoryKey(data));
 		}
 				
 		if (this.stability == 100) {
@@ -66,6 +83,19 @@ class StabilityTestAction extends TestAction {
 		}
 	}
 	
+	/**
+	 * The shared base history (if any) followed by the history of this job.
+	 */
+	private Result[] getData() {
+		Result[] base = sharedBase != null ? sharedBase.getData() : new Result[0];
+		Result[] own = ringBuffer != null ? ringBuffer.getData() : new Result[0];
+		
+		Result[] data = new Result[base.length + own.length];
+		System.arraycopy(base, 0, data, 0, base.length);
+		System.arraycopy(own, 0, data, base.length, own.length);
+		return data;
+	}
+	
 	private void computeStability(Result[] data) {
 		
 		for (Result r : data) {
@@ -82,7 +112,7 @@ class StabilityTestAction extends TestAction {
 	 */
 	private void computeFlakiness(Result[] data) {
 		Boolean previousPassed = null;
-		for (Result r : this.ringBuffer.getData()) {
+		for (Result r : data) {
 			boolean thisPassed = r.passed;
 			if (previousPassed != null && previousPassed != thisPassed) {
 				testStatusChanges++;
@@ -101,20 +131,44 @@ class StabilityTestAction extends TestAction {
 		return this.flakiness;
 	}
 	
-	public String getBigImagePath() {
-		HealthReport healthReport = new HealthReport(100 - flakiness, (Localizable)null);
-		return healthReport.getIconUrl("32x32");
+	public synchronized String getBigImagePath() {
+		if (bigImagePath == null) {
+			bigImagePath = new HealthReport(100 - flakiness, (Localizable)null).getIconUrl("32x32");
+		}
+		return bigImagePath;
 	}
 	
-	public String getSmallImagePath() {
-		HealthReport healthReport = new HealthReport(100 - flakiness, (Localizable)null);
-		return healthReport.getIconUrl("16x16");
+	public synchronized String getSmallImagePath() {
+		if (smallImagePath == null) {
+			smallImagePath = new HealthReport(100 - flakiness, (Localizable)null).getIconUrl("16x16");
+		}
+		return smallImagePath;
+	}
+	
+	/**
+	 * URL of the pass/fail sparkline of the history, relative to the root URL.
+	 * 
+	 * @return the URL or <code>null</code> if there is no history
+	 */
+	@CheckForNull
+	public String getSparklineUrl() {
+		return this.sparklineUrl;
 	}
 
 	public CircularStabilityHistory getRingBuffer() {
 		// TODO: only publish an immutable view of the buffer!
 		return this.ringBuffer;
 	}
+	
+	/**
+	 * The history shared by other jobs which precedes {@link #getRingBuffer()}.
+	 * It is not part of the ring buffer, as its build numbers belong to other jobs,
+	 * and thus isn't included in the stability of classes and packages.
+	 */
+	@CheckForNull
+	public CircularStabilityHistory getSharedBase() {
+		return this.sharedBase;
+	}
 
 	public String getDescription() {
 		return this.description;
@@ -24,19 +24,31 @@
 package de.esailors.jenkins.teststability;
 
 import hudson.tasks.junit.ClassResult;
+import hudson.tasks.junit.PackageResult;
 import hudson.tasks.junit.TestAction;
 import hudson.tasks.junit.TestObject;
 import hudson.tasks.junit.TestResultAction.Data;
 import hudson.tasks.junit.CaseResult;
+import hudson.tasks.test.TabulatedResult;
+import hudson.tasks.test.TestResult;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.CheckForNull;
+
 import jenkins.model.Jenkins;
 
 /**
  * {@link Data} for the test stability history.
+ * <p>
+ * Classes and packages are aggregated from the histories of the cases in this job
+ * only. If the history is shared across branches, the shared base of a case only
+ * counts towards the stability of that case, so e.g. a case of a new branch can
+ * be reported as flaky while its class isn't.
  * 
  * @author ckutz
  */
@@ -48,24 +60,84 @@ class StabilityTestData extends Data {
 		Jenkins.XSTREAM2.aliasType("circularStabilityHistory", CircularStabilityHistory.class);
 	}
 	
+	/**
+	 * Histories of the test cases. Class and package histories are not stored,
+	 * but aggregated from these on demand.
+	 */
 	private final Map<String,CircularStabilityHistory> stability;
 	
-	public StabilityTestData(Map<String, CircularStabilityHistory> stabilityHistory) {
+	/**
+	 * Shared histories of other jobs preceding the ones in {@link #stability}, if
+	 * the history is shared across branches. They are not used for aggregation,
+	 * as their build numbers belong to other jobs.
+	 */
+	@CheckForNull
+	private final Map<String,CircularStabilityHistory> sharedBase;
+	
+	private static final StabilityTestAction NO_HISTORY = new StabilityTestAction(null);
+	
+	/**
+	 * Cache of the actions, including the aggregated class and package histories.
+	 */
+	private transient Map<String,StabilityTestAction> actions;
+	
+	public StabilityTestData(Map<String, CircularStabilityHistory> stabilityHistory,
+			@CheckForNull Map<String, CircularStabilityHistory> sharedBase) {
 		this.stability = stabilityHistory;
+		this.sharedBase = sharedBase;
 	}
 
 	@Override
 	public List<? extends TestAction> getTestAction(TestObject testObject) {
 		
-		if (testObject instanceof CaseResult || testObject instanceof ClassResult) {
-			CircularStabilityHistory ringBuffer = stability.get(testObject.getId());
-			return Collections.singletonList(new StabilityTestAction(ringBuffer));
+		if (testObject instanceof CaseResult || testObject instanceof ClassResult || testObject instanceof PackageResult) {
+			return Collections.singletonList(getAction(testObject));
 		}
 		
 		return Collections.emptyList();
 	}
 	
+	private synchronized StabilityTestAction getAction(TestObject testObject) {
+		if (actions == null) {
+			actions = new HashMap<String, StabilityTestAction>();
+		}
+		
+		String id = testObject.getId();
+		StabilityTestAction action = actions.get(id);
+		if (action == null) {
+			if (testObject instanceof TabulatedResult) {
+				action = new StabilityTestAction(getAggregatedHistory((TabulatedResult) testObject));
+			} else {
+				CircularStabilityHistory ringBuffer = stability.get(id);
+				if (ringBuffer == null) {
+					// don't cache an action for each of the (usually many) tests without history
+					return NO_HISTORY;
+				}
+				action = new StabilityTestAction(ringBuffer, sharedBase != null ? sharedBase.get(id) : null);
+			}
+			actions.put(id, action);
+		}
+		return action;
+	}
 	
+	@CheckForNull
+	private CircularStabilityHistory getAggregatedHistory(TabulatedResult result) {
+		List<CircularStabilityHistory> childHistories = new ArrayList<CircularStabilityHistory>();
+		for (TestResult child : result.getChildren()) {
+			CircularStabilityHistory childHistory;
+			if (child instanceof TabulatedResult) {
+				childHistory = getAction(child).getRingBuffer();
+			} else {
+				childHistory = stability.get(child.getId());
+			}
+			
+			if (childHistory != null) {
+				childHistories.add(childHistory);
+			}
+		}
+		
+		return CircularStabilityHistory.aggregate(childHistories);
+	}
 	
 	public static class Result {
 		int buildNumber;
@@ -27,6 +27,7 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.*;
+import hudson.tasks.junit.CaseResult;
 import hudson.tasks.junit.PackageResult;
 import hudson.tasks.junit.TestDataPublisher;
 import hudson.tasks.junit.TestResult;
@@ -43,14 +44,20 @@ import java.util.Map;
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import de.esailors.jenkins.teststability.StabilityTestData.Result;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
  * {@link TestDataPublisher} for the test stability history.
+ * <p>
+ * Only the histories of test cases are stored, the ones of classes and packages
+ * are aggregated from them by {@link StabilityTestData}. Build records written by
+ * older versions still contain class histories, which are now ignored.
  * 
  * @author ckutz
  */
@@ -58,43 +65,92 @@ public class StabilityTestDataPublisher extends TestDataPublisher {
 	
 	public static final boolean DEBUG = false; 
 	
+	private boolean shareHistoryAcrossBranches;
+	
 	@DataBoundConstructor
 	public StabilityTestDataPublisher() {
 	}
 	
+	/**
+	 * Whether the stability history should be shared with the other jobs of the
+	 * same parent, e.g. the other branches of a multibranch project.
+	 */
+	public boolean isShareHistoryAcrossBranches() {
+		return this.shareHistoryAcrossBranches;
+	}
+	
+	@DataBoundSetter
+	public void setShareHistoryAcrossBranches(boolean shareHistoryAcrossBranches) {
+		this.shareHistoryAcrossBranches = shareHistoryAcrossBranches;
+	}
+	
 	@Override
 	public Data contributeTestData(Run<?, ?> run, @Nonnull FilePath workspace, Launcher launcher, TaskListener listener,
 								   TestResult testResult) throws IOException, InterruptedException {
 
 		Map<String,CircularStabilityHistory> stabilityHistoryPerTest = new HashMap<String,CircularStabilityHistory>();
+		Map<String,CircularStabilityHistory> sharedBasePerTest = null;
 		
-		Collection<hudson.tasks.test.TestResult> classAndCaseResults = getClassAndCaseResults(testResult);
-		debug("Found " + classAndCaseResults.size() + " test results", listener);
-		for (hudson.tasks.test.TestResult result: classAndCaseResults) {
+		// only the test cases are stored, class and package stability is aggregated from them
+		Collection<CaseResult> caseResults = getCaseResults(testResult);
+		debug("Found " + caseResults.size() + " test results", listener);
+		int maxHistoryLength = getDescriptor().getMaxHistoryLength();
+		SharedStabilityHistory sharedHistory = null;
+		if (shareHistoryAcrossBranches) {
+			sharedHistory = getSharedHistory(run, listener);
+			sharedBasePerTest = new HashMap<String,CircularStabilityHistory>();
+		}
+		
+		for (CaseResult result: caseResults) {
 			
-			CircularStabilityHistory history = getPreviousHistory(result);
+			hudson.tasks.test.TestResult previous = getPreviousResult(result);
+			StabilityTestAction previousAction = previous != null ? previous.getTestAction(StabilityTestAction.class) : null;
+			
+			CircularStabilityHistory history = getPreviousHistory(previousAction);
+			CircularStabilityHistory sharedBase = previousAction != null ? previousAction.getSharedBase() : null;
+			
+			if (previous == null && sharedHistory != null) {
+				// a test which is new to this job starts from what the other branches know about it
+				sharedBase = sharedHistory.get(result.getId());
+				if (sharedBase != null) {
+					history = new CircularStabilityHistory(maxHistoryLength);
+				}
+			}
+			
+			if (sharedHistory != null) {
+				if (result.isPassed()) {
+					sharedHistory.add(result.getId(), run.getNumber(), true, maxHistoryLength);
+				} else if (result.getFailCount() > 0) {
+					sharedHistory.add(result.getId(), run.getNumber(), false, maxHistoryLength);
+				}
+			}
 			
 			if (history != null) {
 				if (result.isPassed()) {
 					history.add(run.getNumber(), true);
+					sharedBase = trimSharedBase(sharedBase, maxHistoryLength - history.getData().length);
 					
-					if (history.isAllPassed()) {
+					if (history.isAllPassed() && (sharedBase == null || sharedBase.isAllPassed())) {
 						history = null;
 					}
 					
 				} else if (result.getFailCount() > 0) {
 					history.add(run.getNumber(), false);
+					sharedBase = trimSharedBase(sharedBase, maxHistoryLength - history.getData().length);
 				}
 				// else test is skipped and we leave history unchanged
 				
 				if (history != null) {
 					stabilityHistoryPerTest.put(result.getId(), history);
+					
+					if (sharedBase != null && sharedBasePerTest != null) {
+						sharedBasePerTest.put(result.getId(), sharedBase);
+					}
 				} else {
 					stabilityHistoryPerTest.remove(result.getId());
 				}
 			} else if (isFirstTestFailure(result, history)) {
 				debug("Found failed test " + result.getId(), listener);
-				int maxHistoryLength = getDescriptor().getMaxHistoryLength();
 				CircularStabilityHistory ringBuffer = new CircularStabilityHistory(maxHistoryLength);
 				
 				// add previous results (if there are any):
@@ -105,7 +161,7 @@ public class StabilityTestDataPublisher extends TestDataPublisher {
 			}
 		}
 		
-		return new StabilityTestData(stabilityHistoryPerTest);
+		return new StabilityTestData(stabilityHistoryPerTest, sharedBasePerTest);
 	}
 	
 	private void debug(String msg, TaskListener listener) {
@@ -114,26 +170,52 @@ public class StabilityTestDataPublisher extends TestDataPublisher {
 		}
 	}
 
-	private CircularStabilityHistory getPreviousHistory(hudson.tasks.test.TestResult result) {
-		hudson.tasks.test.TestResult previous = getPreviousResult(result);
+	@CheckForNull
+	private SharedStabilityHistory getSharedHistory(Run<?, ?> run, TaskListener listener) {
+		try {
+			return SharedStabilityHistory.forJob(run.getParent());
+		} catch (IOException e) {
+			e.printStackTrace(listener.error("Failed to load shared test stability history"));
+			return null;
+		}
+	}
 
-		if (previous != null) {
-			StabilityTestAction previousAction = previous.getTestAction(StabilityTestAction.class);
-			if (previousAction != null) {
-				CircularStabilityHistory prevHistory = previousAction.getRingBuffer();
-				
-				if (prevHistory == null) {
-					return null;
-				}
-				
-				// copy to new to not modify the old data
-				CircularStabilityHistory newHistory = new CircularStabilityHistory(getDescriptor().getMaxHistoryLength());
-				newHistory.addAll(prevHistory.getData());
-				return newHistory;
+	@CheckForNull
+	private CircularStabilityHistory getPreviousHistory(@CheckForNull StabilityTestAction previousAction) {
+		if (previousAction != null) {
+			CircularStabilityHistory prevHistory = previousAction.getRingBuffer();
+			
+			if (prevHistory == null) {
+				return null;
 			}
+			
+			// copy to new to not modify the old data
+			CircularStabilityHistory newHistory = new CircularStabilityHistory(getDescriptor().getMaxHistoryLength());
+			newHistory.addAll(prevHistory.getData());
+			return newHistory;
 		}
 		return null;
 	}
+	
+	/**
+	 * Drops the oldest results of the shared base history, so that it only fills
+	 * up the given number of results, which are not taken by the job's own history.
+	 */
+	@CheckForNull
+	private CircularStabilityHistory trimSharedBase(@CheckForNull CircularStabilityHistory sharedBase, int length) {
+		if (sharedBase == null || length <= 0) {
+			return null;
+		}
+		
+		Result[] data = sharedBase.getData();
+		if (data.length <= length) {
+			return sharedBase;
+		}
+		
+		CircularStabilityHistory trimmed = new CircularStabilityHistory(length);
+		trimmed.addAll(data);
+		return trimmed;
+	}
 
 	private boolean isFirstTestFailure(hudson.tasks.test.TestResult result,
 			CircularStabilityHistory previousRingBuffer) {
@@ -185,14 +267,13 @@ public class StabilityTestDataPublisher extends TestDataPublisher {
 		}
 	}
 	
-	private Collection<hudson.tasks.test.TestResult> getClassAndCaseResults(TestResult testResult) {
-		List<hudson.tasks.test.TestResult> results = new ArrayList<hudson.tasks.test.TestResult>();
+	private Collection<CaseResult> getCaseResults(TestResult testResult) {
+		List<CaseResult> results = new ArrayList<CaseResult>();
 		
 		Collection<PackageResult> packageResults = testResult.getChildren();
 		for (PackageResult pkgResult : packageResults) {
 			Collection<ClassResult> classResults = pkgResult.getChildren();
 			for (ClassResult cr : classResults) {
-				results.add(cr);
 				results.addAll(cr.getChildren());
 			}
 		}
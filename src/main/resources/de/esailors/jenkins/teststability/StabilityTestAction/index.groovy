@@ -1 +1,2 @@
-raw("<img src='${rootURL}${my.smallImagePath}'/> <span>(" + my.description + ")</span>")
\ No newline at end of file
+def sparkline = my.sparklineUrl ? "<img src='${rootURL}/${my.sparklineUrl}'/> " : ""
+raw("<img src='${rootURL}${my.smallImagePath}'/> ${sparkline}<span>(" + my.description + ")</span>")
\ No newline at end of file
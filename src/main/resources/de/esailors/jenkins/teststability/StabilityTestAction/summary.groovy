@@ -1 +1,2 @@
-raw("<div><img src='${rootURL}${my.bigImagePath}'/> ${my.description}</div>")
\ No newline at end of file
+def sparkline = my.sparklineUrl ? " <img src='${rootURL}/${my.sparklineUrl}'/>" : ""
+raw("<div><img src='${rootURL}${my.bigImagePath}'/> ${my.description}${sparkline}</div>")
\ No newline at end of file
@@ -0,0 +1,63 @@
+package de.esailors.jenkins.teststability;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.esailors.jenkins.teststability.StabilityTestData.Result;
+
+public class CircularStabilityHistoryTest {
+
+	@Test
+	public void aggregateOfNothingMustBeNull() {
+		Assert.assertNull(CircularStabilityHistory.aggregate(Collections.<CircularStabilityHistory>emptyList()));
+	}
+	
+	@Test
+	public void aggregateMustFailBuildIfAnyHistoryFailed() {
+		CircularStabilityHistory first = new CircularStabilityHistory(10);
+		first.add(1, true);
+		first.add(2, false);
+		first.add(3, true);
+		
+		CircularStabilityHistory second = new CircularStabilityHistory(10);
+		second.add(2, true);
+		second.add(3, false);
+		second.add(4, true);
+		
+		Result[] data = CircularStabilityHistory.aggregate(Arrays.asList(first, second)).getData();
+		
+		Assert.assertEquals(4, data.length);
+		for (int i = 0; i < data.length; i++) {
+			Assert.assertEquals(i + 1, data[i].buildNumber);
+		}
+		Assert.assertTrue(data[0].passed);
+		Assert.assertFalse(data[1].passed);
+		Assert.assertFalse(data[2].passed);
+		Assert.assertTrue(data[3].passed);
+	}
+	
+	@Test
+	public void aggregateMustOnlyKeepNewestBuilds() {
+		CircularStabilityHistory first = new CircularStabilityHistory(3);
+		first.add(1, false);
+		first.add(3, true);
+		first.add(5, true);
+		
+		CircularStabilityHistory second = new CircularStabilityHistory(3);
+		second.add(2, true);
+		second.add(4, false);
+		second.add(6, true);
+		
+		CircularStabilityHistory aggregated = CircularStabilityHistory.aggregate(Arrays.asList(first, second));
+		Result[] data = aggregated.getData();
+		
+		Assert.assertEquals(3, aggregated.getMaxSize());
+		Assert.assertEquals(3, data.length);
+		Assert.assertEquals(4, data[0].buildNumber);
+		Assert.assertFalse(data[0].passed);
+		Assert.assertEquals(6, data[2].buildNumber);
+	}
+}
@@ -0,0 +1,103 @@
+package de.esailors.jenkins.teststability;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import de.esailors.jenkins.teststability.StabilityTestJobs.SomeTestReportBuilder;
+
+public class SharedStabilityHistoryTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+	
+	@Test
+	public void newBranchMustStartWithSharedHistory() throws Exception {
+		MockFolder folder = j.createFolder("project");
+		FreeStyleProject master = createJob(folder, "master", true);
+		FreeStyleProject feature = createJob(folder, "feature", true);
+		
+		build(master, true);
+		build(master, false);
+		build(master, true);
+		
+		// only master's own results since its first failure are shared
+		FreeStyleBuild build = build(feature, false);
+		Assert.assertEquals("Failed 2 times in the last 3 runs. Flakiness: 100%, Stability: 33%",
+				getAction(build).getDescription());
+		// the class is only aggregated from the branch's own results
+		Assert.assertEquals("Failed 1 times in the last 1 runs. Flakiness: 0%, Stability: 0%",
+				getClassAction(build).getDescription());
+		
+		build = build(feature, true);
+		Assert.assertEquals("Failed 2 times in the last 4 runs. Flakiness: 100%, Stability: 50%",
+				getAction(build).getDescription());
+		Assert.assertEquals("Failed 1 times in the last 2 runs. Flakiness: 100%, Stability: 50%",
+				getClassAction(build).getDescription());
+	}
+	
+	@Test
+	public void sharedHistoryMustBeReadBackFromDisk() throws Exception {
+		MockFolder folder = j.createFolder("project");
+		FreeStyleProject master = createJob(folder, "master", true);
+		FreeStyleProject feature = createJob(folder, "feature", true);
+		
+		build(master, false);
+		
+		SharedStabilityHistory.saveAll();
+		Assert.assertTrue(new File(folder.getRootDir(), "test-stability-shared.xml").exists());
+		SharedStabilityHistory.forgetAll();
+		
+		FreeStyleBuild build = build(feature, false);
+		Assert.assertEquals("Failed 2 times in the last 2 runs. Flakiness: 0%, Stability: 0%",
+				getAction(build).getDescription());
+	}
+	
+	@Test
+	public void historyMustNotBeSharedIfNotEnabled() throws Exception {
+		MockFolder folder = j.createFolder("project");
+		FreeStyleProject master = createJob(folder, "master", false);
+		FreeStyleProject feature = createJob(folder, "feature", false);
+		
+		build(master, false);
+		
+		FreeStyleBuild build = build(feature, false);
+		Assert.assertEquals("Failed 1 times in the last 1 runs. Flakiness: 0%, Stability: 0%",
+				getAction(build).getDescription());
+	}
+	
+	private FreeStyleProject createJob(MockFolder folder, String name, boolean shareHistory) throws IOException {
+		FreeStyleProject project = folder.createProject(FreeStyleProject.class, name);
+		
+		StabilityTestDataPublisher publisher = new StabilityTestDataPublisher();
+		publisher.setShareHistoryAcrossBranches(shareHistory);
+		StabilityTestJobs.configure(project, new SomeTestReportBuilder("flaky"), publisher);
+		return project;
+	}
+	
+	private FreeStyleBuild build(FreeStyleProject project, boolean passed) throws Exception {
+		SomeTestReportBuilder reportBuilder = project.getBuildersList().get(SomeTestReportBuilder.class);
+		if (passed) {
+			reportBuilder.setFailing();
+		} else {
+			reportBuilder.setFailing("flaky");
+		}
+		return project.scheduleBuild2(0).get();
+	}
+	
+	private StabilityTestAction getClassAction(FreeStyleBuild build) {
+		return StabilityTestJobs.getAction(SomeTestReportBuilder.getClassResult(build));
+	}
+	
+	private StabilityTestAction getAction(FreeStyleBuild build) {
+		return StabilityTestJobs.getAction(SomeTestReportBuilder.getClassResult(build).getCaseResult("flaky"));
+	}
+}
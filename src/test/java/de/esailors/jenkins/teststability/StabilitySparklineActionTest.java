@@ -0,0 +1,93 @@
+package de.esailors.jenkins.teststability;
+
+import java.net.URL;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.JenkinsRule.WebClient;
+
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+import de.esailors.jenkins.teststability.StabilityTestData.Result;
+
+public class StabilitySparklineActionTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+	
+	@Test
+	public void sparklineMustBeRevalidatedByETag() throws Exception {
+		WebClient wc = j.createWebClient();
+		wc.setThrowExceptionOnFailingStatusCode(false);
+		
+		WebResponse response = get(wc, "0110", null);
+		Assert.assertEquals(200, response.getStatusCode());
+		Assert.assertEquals("image/svg+xml", response.getContentType());
+		String etag = response.getResponseHeaderValue("ETag");
+		Assert.assertNotNull(etag);
+		Assert.assertNotNull(response.getResponseHeaderValue("Last-Modified"));
+		
+		Assert.assertEquals(304, get(wc, "0110", etag).getStatusCode());
+		Assert.assertEquals(304, get(wc, "0110", "W/" + etag).getStatusCode());
+		Assert.assertEquals(304, get(wc, "0110", "\"other\", " + etag).getStatusCode());
+		Assert.assertEquals(200, get(wc, "0111", etag).getStatusCode());
+	}
+	
+	@Test
+	public void sparklineMustBeRevalidatedByDate() throws Exception {
+		WebClient wc = j.createWebClient();
+		wc.setThrowExceptionOnFailingStatusCode(false);
+		
+		String lastModified = get(wc, "0110", null).getResponseHeaderValue("Last-Modified");
+		Assert.assertEquals(lastModified, get(wc, "0111", null).getResponseHeaderValue("Last-Modified"));
+		
+		Assert.assertEquals(304, get(wc, "0110", null, "If-Modified-Since", lastModified).getStatusCode());
+		Assert.assertEquals(200, get(wc, "0110", null, "If-Modified-Since", "not a date").getStatusCode());
+	}
+	
+	@Test
+	public void sparklineMustBeCachedByHistory() {
+		Assert.assertSame(StabilitySparklineAction.getSparkline("1101"), StabilitySparklineAction.getSparkline("1101"));
+		Assert.assertNotSame(StabilitySparklineAction.getSparkline("1101"), StabilitySparklineAction.getSparkline("1100"));
+	}
+	
+	@Test
+	public void invalidHistoryMustBeRejected() throws Exception {
+		WebClient wc = j.createWebClient();
+		wc.setThrowExceptionOnFailingStatusCode(false);
+		
+		Assert.assertEquals(400, get(wc, "01x0", null).getStatusCode());
+		Assert.assertEquals(400, get(wc, "", null).getStatusCode());
+	}
+	
+	@Test
+	public void historyKeyMustBeLimitedToNewestResults() {
+		Result[] data = new Result[1500];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = new Result(i, i < 500);
+		}
+		
+		String key = StabilitySparklineAction.getHistoryKey(data);
+		Assert.assertEquals(1000, key.length());
+		Assert.assertEquals(-1, key.indexOf('1'));
+	}
+	
+	private WebResponse get(WebClient wc, String history, String ifNoneMatch) throws Exception {
+		return get(wc, history, ifNoneMatch, null, null);
+	}
+	
+	private WebResponse get(WebClient wc, String history, String ifNoneMatch, String header, String value) throws Exception {
+		WebRequestSettings request = new WebRequestSettings(
+				new URL(j.getURL(), StabilitySparklineAction.getSparklineUrl(history)));
+		if (ifNoneMatch != null) {
+			request.addAdditionalHeader("If-None-Match", ifNoneMatch);
+		}
+		if (header != null) {
+			request.addAdditionalHeader(header, value);
+		}
+		return wc.getPage(request).getWebResponse();
+	}
+}
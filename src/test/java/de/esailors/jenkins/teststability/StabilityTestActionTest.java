@@ -58,4 +58,22 @@ public class StabilityTestActionTest {
 		StabilityTestAction action = new StabilityTestAction(ringBuffer);
 		Assert.assertEquals(50, action.getFlakiness());
 	}
+	
+	@Test
+	public void sparklineMustEncodeHistoryOldestFirst() {
+		CircularStabilityHistory ringBuffer = new CircularStabilityHistory(3);
+		ringBuffer.add(new Result(1, false));
+		ringBuffer.add(new Result(2, true));
+		ringBuffer.add(new Result(3, true));
+		ringBuffer.add(new Result(4, false));
+		
+		StabilityTestAction action = new StabilityTestAction(ringBuffer);
+		Assert.assertEquals("test-stability/sparkline?history=110", action.getSparklineUrl());
+	}
+	
+	@Test
+	public void sparklineMustBeNullWithoutHistory() {
+		StabilityTestAction action = new StabilityTestAction(null);
+		Assert.assertNull(action.getSparklineUrl());
+	}
 }
@@ -0,0 +1,195 @@
+package de.esailors.jenkins.teststability;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.junit.TestResultAction.Data;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jenkins.model.Jenkins;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MemoryAssert;
+import org.jvnet.hudson.test.TestExtension;
+
+/**
+ * Runs the {@link StabilityTestDataPublisher} on jobs with synthetic JUnit reports
+ * and checks retained heap and serialized size of the stability data of the last
+ * build, as well as the average publish time over all builds, against budgets.
+ * <p>
+ * By default a single small scenario is run, without the publish time budget,
+ * which depends on the machine. The realistic scenarios (up to 200k test cases and
+ * hundreds of builds) and the publish time budget are enabled by the
+ * <code>scale-tests</code> profile, i.e.
+ * <code>mvn test -Pscale-tests -Dtest=StabilityTestDataPublisherScaleTest</code>.
+ */
+@RunWith(Parameterized.class)
+public class StabilityTestDataPublisherScaleTest {
+	
+	private static final boolean FULL = Boolean.getBoolean("teststability.scale.full");
+	
+	private static final int CASES_PER_CLASS = 50;
+	
+	// budgets; per tracked (i.e. flaky) test case where it makes sense
+	private static final long PUBLISH_MILLIS_BASE = Long.getLong("teststability.scale.publishMillisBase", 200);
+	private static final long PUBLISH_MILLIS_PER_1000_CASES = Long.getLong("teststability.scale.publishMillisPer1000Cases", 20);
+	private static final int HEAP_BYTES_PER_BUILD_AND_HISTORY = Integer.getInteger("teststability.scale.heapBytesPerBuildAndHistory", 64);
+	private static final int SERIALIZED_BYTES_PER_BUILD_AND_HISTORY = Integer.getInteger("teststability.scale.serializedBytesPerBuildAndHistory", 16);
+	private static final int BYTES_PER_HISTORY = 512;
+	private static final int BYTES_BASE = 4096;
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+	
+	private final int cases;
+	private final int builds;
+	private final int flakyPercent;
+	
+	public StabilityTestDataPublisherScaleTest(int cases, int builds, int flakyPercent) {
+		this.cases = cases;
+		this.builds = builds;
+		this.flakyPercent = flakyPercent;
+	}
+	
+	@Parameters(name = "{0} cases, {1} builds, {2}% flaky")
+	public static List<Object[]> scenarios() {
+		if (FULL) {
+			return Arrays.asList(new Object[][] {
+					{ 10000, 300, 0 },
+					{ 10000, 300, 5 },
+					{ 50000, 200, 1 },
+					{ 50000, 200, 20 },
+					{ 200000, 100, 1 },
+			});
+		}
+		return Arrays.asList(new Object[][] {
+				{ 2000, 40, 5 },
+		});
+	}
+	
+	@Test
+	public void publisherMustStayWithinBudgets() throws Exception {
+		FreeStyleProject project = j.createFreeStyleProject();
+		StabilityTestJobs.configure(project, new SyntheticReportBuilder(cases, flakyPercent), new TimedPublisher());
+		TimedPublisher.reset();
+		
+		for (int i = 0; i < builds; i++) {
+			project.scheduleBuild2(0).get();
+		}
+		
+		Assert.assertEquals(builds, TimedPublisher.runs);
+		Assert.assertEquals(cases, StabilityTestJobs.getTestResult(project.getLastBuild()).getTotalCount());
+		
+		int maxHistoryLength = j.jenkins.getDescriptorByType(StabilityTestDataPublisher.DescriptorImpl.class).getMaxHistoryLength();
+		int flakyCases = cases * flakyPercent / 100;
+		int historyBytes = BYTES_PER_HISTORY + maxHistoryLength * HEAP_BYTES_PER_BUILD_AND_HISTORY;
+		int serializedHistoryBytes = BYTES_PER_HISTORY + maxHistoryLength * SERIALIZED_BYTES_PER_BUILD_AND_HISTORY;
+		
+		MemoryAssert.assertHeapUsage(TimedPublisher.lastData, BYTES_BASE + flakyCases * historyBytes);
+		
+		int serializedBytes = Jenkins.XSTREAM2.toXML(TimedPublisher.lastData).getBytes("UTF-8").length;
+		int serializedBudget = BYTES_BASE + flakyCases * serializedHistoryBytes;
+		Assert.assertTrue("stability data has " + serializedBytes + " bytes, budget is " + serializedBudget + " bytes",
+				serializedBytes <= serializedBudget);
+		
+		if (FULL) {
+			long averagePublishMillis = TimedPublisher.totalNanos / TimedPublisher.runs / 1000000;
+			long publishBudget = PUBLISH_MILLIS_BASE + cases * PUBLISH_MILLIS_PER_1000_CASES / 1000;
+			Assert.assertTrue("publishing took " + averagePublishMillis + "ms on average, budget is " + publishBudget + "ms",
+					averagePublishMillis <= publishBudget);
+		}
+	}
+	
+	/**
+	 * Measures the publisher during the builds and keeps the data of the last one.
+	 */
+	public static class TimedPublisher extends StabilityTestDataPublisher {
+		
+		static volatile long totalNanos;
+		static volatile int runs;
+		static volatile Data lastData;
+		
+		static void reset() {
+			totalNanos = 0;
+			runs = 0;
+			lastData = null;
+		}
+		
+		@Override
+		public Data contributeTestData(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener,
+				TestResult testResult) throws IOException, InterruptedException {
+			long start = System.nanoTime();
+			Data data = super.contributeTestData(run, workspace, launcher, listener, testResult);
+			totalNanos += System.nanoTime() - start;
+			runs++;
+			lastData = data;
+			return data;
+		}
+		
+		@TestExtension
+		public static class DescriptorImpl extends StabilityTestDataPublisher.DescriptorImpl {
+		}
+	}
+	
+	/**
+	 * Writes a JUnit report with the given number of test cases.
+	 * The flaky ones fail randomly, but reproducibly, in half of the builds.
+	 */
+	private static class SyntheticReportBuilder extends StabilityTestJobs.ReportBuilder {
+		
+		private final int cases;
+		private final int flakyPercent;
+		
+		SyntheticReportBuilder(int cases, int flakyPercent) {
+			this.cases = cases;
+			this.flakyPercent = flakyPercent;
+		}
+
+		@Override
+		void writeReport(AbstractBuild<?, ?> build, PrintWriter w) {
+			int flakyCases = cases * flakyPercent / 100;
+			Random random = new Random(build.getNumber());
+			
+			w.println("<?xml version='1.0' encoding='UTF-8'?>");
+			w.println("<testsuites>");
+			for (int c = 0; c < cases; c += CASES_PER_CLASS) {
+				String className = "pkg" + (c / (CASES_PER_CLASS * 20)) + ".Class" + (c / CASES_PER_CLASS);
+				StringBuilder testcases = new StringBuilder();
+				int count = 0;
+				int failures = 0;
+				for (int i = c; i < Math.min(c + CASES_PER_CLASS, cases); i++) {
+					// spread the flaky cases evenly over all classes
+					boolean flaky = flakyCases > 0 && i % (cases / flakyCases) == 0;
+					if (flaky && random.nextBoolean()) {
+						testcases.append("<testcase classname='" + className + "' name='test" + i + "' time='0.001'>"
+								+ "<failure message='synthetic failure'>synthetic failure</failure></testcase>\n");
+						failures++;
+					} else {
+						testcases.append("<testcase classname='" + className + "' name='test" + i + "' time='0.001'/>\n");
+					}
+					count++;
+				}
+				w.println("<testsuite name='" + className + "' tests='" + count + "' failures='"
+						+ failures + "' errors='0' skipped='0' time='0.1'>");
+				w.print(testcases);
+				w.println("</testsuite>");
+			}
+			w.println("</testsuites>");
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package de.esailors.jenkins.teststability;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.junit.ClassResult;
+import hudson.tasks.junit.PackageResult;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import de.esailors.jenkins.teststability.StabilityTestJobs.SomeTestReportBuilder;
+
+public class StabilityTestDataTest {
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+	
+	@Test
+	public void classAndPackageStabilityMustBeAggregatedFromCases() throws Exception {
+		FreeStyleProject project = j.createFreeStyleProject();
+		SomeTestReportBuilder reportBuilder = StabilityTestJobs.configure(project,
+				new SomeTestReportBuilder("a", "b"), new StabilityTestDataPublisher());
+		
+		reportBuilder.setFailing("a");
+		project.scheduleBuild2(0).get();
+		reportBuilder.setFailing("b");
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+		
+		ClassResult classResult = SomeTestReportBuilder.getClassResult(build);
+		PackageResult packageResult = classResult.getParent();
+		
+		Assert.assertEquals("Failed 1 times in the last 2 runs. Flakiness: 100%, Stability: 50%",
+				StabilityTestJobs.getAction(classResult.getCaseResult("a")).getDescription());
+		Assert.assertEquals("Failed 1 times in the last 2 runs. Flakiness: 100%, Stability: 50%",
+				StabilityTestJobs.getAction(classResult.getCaseResult("b")).getDescription());
+		
+		// one of the cases failed in each build
+		Assert.assertEquals("Failed 2 times in the last 2 runs. Flakiness: 0%, Stability: 0%",
+				StabilityTestJobs.getAction(classResult).getDescription());
+		Assert.assertEquals("Failed 2 times in the last 2 runs. Flakiness: 0%, Stability: 0%",
+				StabilityTestJobs.getAction(packageResult).getDescription());
+		
+		// only the cases are stored
+		String buildXml = new XmlFile(new File(build.getRootDir(), "build.xml")).asString();
+		Assert.assertTrue(buildXml.contains("<string>" + classResult.getCaseResult("a").getId() + "</string>"));
+		Assert.assertFalse(buildXml.contains("<string>" + classResult.getId() + "</string>"));
+	}
+}
@@ -0,0 +1,111 @@
+package de.esailors.jenkins.teststability;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Descriptor;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.tasks.junit.ClassResult;
+import hudson.tasks.junit.JUnitResultArchiver;
+import hudson.tasks.junit.TestDataPublisher;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.junit.TestResultAction;
+import hudson.util.DescribableList;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Fixture for jobs which write a JUnit report and archive it with a {@link StabilityTestDataPublisher}.
+ */
+class StabilityTestJobs {
+	
+	static final String REPORT = "report.xml";
+	
+	static <T extends ReportBuilder> T configure(FreeStyleProject project, T reportBuilder,
+			StabilityTestDataPublisher publisher) throws IOException {
+		project.getBuildersList().add(reportBuilder);
+		
+		DescribableList<TestDataPublisher, Descriptor<TestDataPublisher>> publishers =
+				new DescribableList<TestDataPublisher, Descriptor<TestDataPublisher>>(Saveable.NOOP);
+		publishers.add(publisher);
+		project.getPublishersList().add(new JUnitResultArchiver(REPORT, false, publishers));
+		return reportBuilder;
+	}
+	
+	static TestResult getTestResult(Run<?, ?> build) {
+		return build.getAction(TestResultAction.class).getResult();
+	}
+	
+	static StabilityTestAction getAction(hudson.tasks.test.TestResult result) {
+		return result.getTestAction(StabilityTestAction.class);
+	}
+	
+	/**
+	 * Writes the JUnit report into the workspace.
+	 */
+	abstract static class ReportBuilder extends TestBuilder {
+		
+		@Override
+		public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+				throws InterruptedException, IOException {
+			PrintWriter w = new PrintWriter(new OutputStreamWriter(build.getWorkspace().child(REPORT).write(), "UTF-8"));
+			try {
+				writeReport(build, w);
+			} finally {
+				w.close();
+			}
+			return true;
+		}
+		
+		abstract void writeReport(AbstractBuild<?, ?> build, PrintWriter w) throws IOException;
+	}
+	
+	/**
+	 * Writes a report of the test class <code>pkg.SomeTest</code> with the given cases,
+	 * of which the ones set with {@link #setFailing(String...)} fail.
+	 */
+	static class SomeTestReportBuilder extends ReportBuilder {
+		
+		static final String PACKAGE = "pkg";
+		static final String CLASS = "SomeTest";
+		
+		private final String[] cases;
+		private final Set<String> failing = new HashSet<String>();
+		
+		SomeTestReportBuilder(String... cases) {
+			this.cases = cases;
+		}
+		
+		void setFailing(String... failing) {
+			this.failing.clear();
+			this.failing.addAll(Arrays.asList(failing));
+		}
+		
+		static ClassResult getClassResult(Run<?, ?> build) {
+			return getTestResult(build).byPackage(PACKAGE).getClassResult(CLASS);
+		}
+
+		@Override
+		void writeReport(AbstractBuild<?, ?> build, PrintWriter w) {
+			String className = PACKAGE + "." + CLASS;
+			w.print("<testsuite name='" + className + "' tests='" + cases.length + "' failures='" + failing.size() + "'>");
+			for (String name : cases) {
+				if (failing.contains(name)) {
+					w.print("<testcase classname='" + className + "' name='" + name + "'><failure message='failed'/></testcase>");
+				} else {
+					w.print("<testcase classname='" + className + "' name='" + name + "'/>");
+				}
+			}
+			w.print("</testsuite>");
+		}
+	}
+}